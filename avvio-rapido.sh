@@ -0,0 +1,16 @@
+#!/bin/sh
+# Avvia la rubrica usando un archivio AppCDS (Class Data Sharing).
+# Al primo avvio l'archivio viene generato con un'esecuzione di addestramento
+# (--benchmark-avvio), che carica tutti i contatti e termina da sola.
+
+cd "$(dirname "$0")" || exit 1
+
+ARCHIVIO=rubrica.jsa
+
+# L'archivio vale solo per il Rubrica.jar da cui è stato generato
+if [ ! -f "$ARCHIVIO" ] || [ Rubrica.jar -nt "$ARCHIVIO" ]; then
+    rm -f "$ARCHIVIO"
+    java -XX:ArchiveClassesAtExit="$ARCHIVIO" -jar Rubrica.jar --benchmark-avvio > /dev/null
+fi
+
+exec java -XX:SharedArchiveFile="$ARCHIVIO" -Xshare:auto -jar Rubrica.jar "$@"
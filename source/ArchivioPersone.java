@@ -0,0 +1,346 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class ArchivioPersone extends AbstractList<Persona> implements RandomAccess {
+    private static final int CAPACITA_INIZIALE = 1 << 20;
+    private static final int CAPACITA_MASSIMA = Integer.MAX_VALUE - 8;
+    private static final String NESSUN_FILE = "";
+
+    private final int limiteCache;
+    private int size = 0;
+
+    // Modalità normale: le persone restano sull'heap
+    private Persona[] record;
+
+    // Modalità a memoria limitata: sull'heap solo le chiavi di ricerca/ordinamento,
+    // i record completi stanno in un buffer off-heap
+    private String[] nomi;
+    private String[] cognomi;
+    private String[] telefoni;
+    // null se il file è nome-cognome.txt, NESSUN_FILE se il contatto non è ancora stato salvato
+    private String[] file;
+    private int[] posizioni;
+    private int[] lunghezze;
+    private ByteBuffer arena;
+    private int fineArena = 0;
+    private int byteLiberi = 0;
+    private LinkedHashMap<Integer, Persona> cache;
+
+    public ArchivioPersone() {
+        this.limiteCache = 0;
+        this.record = new Persona[16];
+    }
+
+    public ArchivioPersone(int limiteCache) {
+        this.limiteCache = limiteCache;
+        this.nomi = new String[16];
+        this.cognomi = new String[16];
+        this.telefoni = new String[16];
+        this.file = new String[16];
+        this.posizioni = new int[16];
+        this.lunghezze = new int[16];
+        this.arena = ByteBuffer.allocateDirect(CAPACITA_INIZIALE);
+        this.cache = new LinkedHashMap<Integer, Persona>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Persona> eldest) {
+                return size() > ArchivioPersone.this.limiteCache;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public String getNome(int index) {
+        Objects.checkIndex(index, size);
+        return arena == null ? record[index].getNome() : nomi[index];
+    }
+
+    public String getCognome(int index) {
+        Objects.checkIndex(index, size);
+        return arena == null ? record[index].getCognome() : cognomi[index];
+    }
+
+    public String getTelefono(int index) {
+        Objects.checkIndex(index, size);
+        return arena == null ? record[index].getTelefono() : telefoni[index];
+    }
+
+    public String getFile(int index) {
+        Objects.checkIndex(index, size);
+        if (arena == null) {
+            return record[index].getFile();
+        }
+        return espandiFile(file[index], nomi[index], cognomi[index]);
+    }
+
+    public void setFile(int index, String filename) {
+        Objects.checkIndex(index, size);
+        if (arena == null) {
+            record[index].setFile(filename);
+            return;
+        }
+
+        file[index] = comprimiFile(filename, nomi[index], cognomi[index]);
+        Persona persona = cache.get(posizioni[index]);
+        if (persona != null) {
+            persona.setFile(filename);
+        }
+    }
+
+    private static String comprimiFile(String filename, String nome, String cognome) {
+        if (filename == null) {
+            return NESSUN_FILE;
+        }
+        return filename.equals(nome + "-" + cognome + ".txt") ? null : filename;
+    }
+
+    private static String espandiFile(String compresso, String nome, String cognome) {
+        if (compresso == null) {
+            return nome + "-" + cognome + ".txt";
+        }
+        return compresso.isEmpty() ? null : compresso;
+    }
+
+    @Override
+    public Persona get(int index) {
+        Objects.checkIndex(index, size);
+        if (arena == null) {
+            return record[index];
+        }
+
+        Persona persona = cache.get(posizioni[index]);
+        if (persona == null) {
+            persona = leggiRecord(posizioni[index]);
+            persona.setFile(getFile(index));
+            cache.put(posizioni[index], persona);
+        }
+        // Copia: chi modifica la persona ottenuta non deve toccare la cache, che
+        // altrimenti mostrerebbe valori mai scritti nell'archivio
+        return new Persona(persona);
+    }
+
+    @Override
+    public Persona set(int index, Persona persona) {
+        Objects.checkIndex(index, size);
+        if (arena == null) {
+            Persona precedente = record[index];
+            record[index] = persona;
+            return precedente;
+        }
+
+        Persona precedente = get(index);
+        byte[] dati = codifica(persona);
+        int vecchiaPosizione = posizioni[index];
+        int posizione = accoda(dati, index);
+
+        cache.remove(vecchiaPosizione);
+        byteLiberi += lunghezze[index];
+        aggiornaChiavi(index, persona, posizione, dati.length);
+        return precedente;
+    }
+
+    @Override
+    public void add(int index, Persona persona) {
+        Objects.checkIndex(index, size + 1);
+        garantisciCapacita(size + 1);
+
+        // Il record va scritto prima di toccare lo stato: se l'arena non può crescere
+        // l'archivio resta com'era
+        byte[] dati = null;
+        int posizione = 0;
+        if (arena != null) {
+            dati = codifica(persona);
+            posizione = accoda(dati, -1);
+        }
+
+        if (arena == null) {
+            System.arraycopy(record, index, record, index + 1, size - index);
+            record[index] = persona;
+        } else {
+            System.arraycopy(nomi, index, nomi, index + 1, size - index);
+            System.arraycopy(cognomi, index, cognomi, index + 1, size - index);
+            System.arraycopy(telefoni, index, telefoni, index + 1, size - index);
+            System.arraycopy(file, index, file, index + 1, size - index);
+            System.arraycopy(posizioni, index, posizioni, index + 1, size - index);
+            System.arraycopy(lunghezze, index, lunghezze, index + 1, size - index);
+            aggiornaChiavi(index, persona, posizione, dati.length);
+        }
+
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Persona remove(int index) {
+        Persona rimossa = get(index);
+        rimuovi(new int[] {index});
+        return rimossa;
+    }
+
+    public void rimuovi(int[] indici) {
+        int[] ordinati = indici.clone();
+        Arrays.sort(ordinati);
+
+        int scrittura = 0;
+        int k = 0;
+        for (int lettura = 0; lettura < size; lettura++) {
+            while (k < ordinati.length && ordinati[k] < lettura) {
+                k++;
+            }
+
+            if (k < ordinati.length && ordinati[k] == lettura) {
+                if (arena != null) {
+                    cache.remove(posizioni[lettura]);
+                    byteLiberi += lunghezze[lettura];
+                }
+                continue;
+            }
+
+            if (arena == null) {
+                record[scrittura] = record[lettura];
+            } else {
+                nomi[scrittura] = nomi[lettura];
+                cognomi[scrittura] = cognomi[lettura];
+                telefoni[scrittura] = telefoni[lettura];
+                file[scrittura] = file[lettura];
+                posizioni[scrittura] = posizioni[lettura];
+                lunghezze[scrittura] = lunghezze[lettura];
+            }
+            scrittura++;
+        }
+
+        for (int i = scrittura; i < size; i++) {
+            if (arena == null) {
+                record[i] = null;
+            } else {
+                nomi[i] = null;
+                cognomi[i] = null;
+                telefoni[i] = null;
+                file[i] = null;
+            }
+        }
+
+        size = scrittura;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        rimuovi(tuttiGliIndici());
+    }
+
+    private int[] tuttiGliIndici() {
+        int[] indici = new int[size];
+        for (int i = 0; i < size; i++) {
+            indici[i] = i;
+        }
+        return indici;
+    }
+
+    private void garantisciCapacita(int richiesta) {
+        int attuale = arena == null ? record.length : posizioni.length;
+        if (richiesta <= attuale) {
+            return;
+        }
+
+        int nuova = Math.max(richiesta, attuale * 2);
+        if (arena == null) {
+            record = Arrays.copyOf(record, nuova);
+        } else {
+            nomi = Arrays.copyOf(nomi, nuova);
+            cognomi = Arrays.copyOf(cognomi, nuova);
+            telefoni = Arrays.copyOf(telefoni, nuova);
+            file = Arrays.copyOf(file, nuova);
+            posizioni = Arrays.copyOf(posizioni, nuova);
+            lunghezze = Arrays.copyOf(lunghezze, nuova);
+        }
+    }
+
+    private static byte[] codifica(Persona persona) {
+        byte[] nome = persona.getNome().getBytes(StandardCharsets.UTF_8);
+        byte[] cognome = persona.getCognome().getBytes(StandardCharsets.UTF_8);
+        byte[] indirizzo = persona.getIndirizzo().getBytes(StandardCharsets.UTF_8);
+        byte[] telefono = persona.getTelefono().getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(5 * Integer.BYTES + nome.length + cognome.length +
+                                                indirizzo.length + telefono.length);
+        buffer.putInt(nome.length).put(nome);
+        buffer.putInt(cognome.length).put(cognome);
+        buffer.putInt(indirizzo.length).put(indirizzo);
+        buffer.putInt(telefono.length).put(telefono);
+        buffer.putInt(persona.getEta());
+        return buffer.array();
+    }
+
+    private int accoda(byte[] dati, int indiceEscluso) {
+        if ((long) fineArena + dati.length > arena.capacity()) {
+            compattaArena(dati.length, indiceEscluso);
+        }
+
+        int posizione = fineArena;
+        arena.position(posizione);
+        arena.put(dati);
+        fineArena += dati.length;
+        return posizione;
+    }
+
+    private void aggiornaChiavi(int index, Persona persona, int posizione, int lunghezza) {
+        nomi[index] = persona.getNome();
+        cognomi[index] = persona.getCognome();
+        telefoni[index] = persona.getTelefono();
+        file[index] = comprimiFile(persona.getFile(), persona.getNome(), persona.getCognome());
+        posizioni[index] = posizione;
+        lunghezze[index] = lunghezza;
+    }
+
+    private Persona leggiRecord(int posizione) {
+        arena.position(posizione);
+        String nome = leggiStringa();
+        String cognome = leggiStringa();
+        String indirizzo = leggiStringa();
+        String telefono = leggiStringa();
+        int eta = arena.getInt();
+        return new Persona(nome, cognome, indirizzo, telefono, eta);
+    }
+
+    private String leggiStringa() {
+        byte[] bytes = new byte[arena.getInt()];
+        arena.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void compattaArena(int richiesti, int indiceEscluso) {
+        long occupati = (long) fineArena - byteLiberi + richiesti;
+        long capacita = arena.capacity();
+        while (capacita < occupati * 2 && capacita < CAPACITA_MASSIMA) {
+            capacita = Math.min(capacita * 2, CAPACITA_MASSIMA);
+        }
+        if (occupati > capacita) {
+            throw new IllegalStateException("Archivio off-heap pieno: " + occupati + " byte richiesti");
+        }
+
+        ByteBuffer nuova = ByteBuffer.allocateDirect((int) capacita);
+        for (int i = 0; i < size; i++) {
+            if (i == indiceEscluso) {
+                continue;
+            }
+            ByteBuffer sorgente = arena.duplicate();
+            sorgente.limit(posizioni[i] + lunghezze[i]).position(posizioni[i]);
+            posizioni[i] = nuova.position();
+            nuova.put(sorgente);
+        }
+
+        if (indiceEscluso >= 0) {
+            lunghezze[indiceEscluso] = 0;
+        }
+
+        arena = nuova;
+        fineArena = nuova.position();
+        byteLiberi = 0;
+        cache.clear();
+    }
+}
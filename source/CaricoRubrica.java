@@ -0,0 +1,568 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+public class CaricoRubrica {
+    private static final long INTERVALLO_CAMPIONE_NS = 10_000_000L;
+    private static final long TIMEOUT_MS = 60_000;
+    private static final long INTERVALLO_CONTROLLO_MS = 50;
+    private static final String[] AZIONI = {
+        "apertura_conferma", "apertura_editor", "digitazione", "elimina", "modifica", "nuovo", "ordina"
+    };
+
+    private static final String[] NOMI = {
+        "Marco", "Luca", "Giulia", "Anna", "Sofia", "Matteo", "Chiara", "Paolo", "Elena", "Davide"
+    };
+    private static final String[] COGNOMI = {
+        "Rossi", "Bianchi", "Verdi", "Russo", "Esposito", "Romano", "Colombo", "Ricci", "Marino", "Greco"
+    };
+    private static final String[] CITTA = {
+        "Roma", "Milano", "Napoli", "Torino", "Avellino", "Bologna", "Firenze", "Bari", "Genova", "Palermo"
+    };
+
+    private static final Istogramma latenzaEdt = new Istogramma();
+    private static final Map<String, Istogramma> tempiAzioni = new TreeMap<>();
+    private static final Semaphore cambiamentiUi = new Semaphore(0);
+    private static volatile boolean campionamentoAttivo = true;
+
+    private static Random random;
+    private static int contatoreNuovi = 0;
+
+    private static JTable tabella;
+    private static JTextField searchField;
+    private static JButton btnNuovo;
+
+    public static void main(String[] args) throws Exception {
+        Integer contatti = null;
+        int azioni = 200;
+        long seed = 42;
+        String dir = null;
+        String report = "report-carico.json";
+        List<String> argsApp = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--contatti":
+                    contatti = Integer.parseInt(args[++i]);
+                    break;
+                case "--azioni":
+                    azioni = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--dir":
+                    dir = args[++i];
+                    break;
+                case "--report":
+                    report = args[++i];
+                    break;
+                default:
+                    argsApp.add(args[i]);
+                    break;
+            }
+        }
+
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("Nessun display disponibile: avviare con un display virtuale (es. xvfb-run)");
+            System.exit(1);
+        }
+        if (dir != null && contatti != null) {
+            System.err.println("--dir e --contatti sono alternativi: con --dir si usa il dataset indicato");
+            System.exit(1);
+        }
+        if (dir != null && !new File(dir, "index.txt").exists()) {
+            System.err.println("Nessuna rubrica in " + dir + " (manca index.txt)");
+            System.exit(1);
+        }
+
+        // La sessione modifica i contatti: si lavora sempre su una copia temporanea,
+        // così ogni esecuzione parte dagli stessi dati e il dataset originale resta intatto
+        File base = Files.createTempDirectory("rubrica-carico").toFile();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> eliminaCartella(base)));
+        System.setProperty("rubrica.dir", base.getPath());
+        random = new Random(seed);
+
+        for (String azione : AZIONI) {
+            tempiAzioni.put(azione, new Istogramma());
+        }
+
+        try {
+            if (dir != null) {
+                copiaDataset(new File(dir), base);
+            } else {
+                generaDataset(contatti == null ? 10000 : contatti);
+            }
+            eseguiSessione(azioni, report, argsApp);
+        } catch (Exception e) {
+            e.printStackTrace();
+            // L'EDT non è un thread daemon: senza exit la JVM resterebbe appesa
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static void eseguiSessione(int azioni, String report, List<String> argsApp) throws Exception {
+        // Le attese si risvegliano quando si apre una finestra o un popup, invece di
+        // interrogare l'EDT di continuo e falsare la latenza misurata
+        Toolkit.getDefaultToolkit().addAWTEventListener(e -> cambiamentiUi.release(),
+            AWTEvent.WINDOW_EVENT_MASK | AWTEvent.CONTAINER_EVENT_MASK);
+
+        Thread campionatore = avviaCampionatore();
+
+        long inizio = System.nanoTime();
+        RubricaMain.main(argsApp.toArray(new String[0]));
+        attendiAvvio();
+        long caricamentoNs = System.nanoTime() - inizio;
+        int contattiCaricati = suEdt(() -> tabella.getRowCount());
+
+        for (int i = 0; i < azioni; i++) {
+            eseguiAzione();
+        }
+
+        campionamentoAttivo = false;
+        campionatore.join();
+
+        scriviReport(new File(report), contattiCaricati, azioni, caricamentoNs);
+        System.out.println("Report scritto in " + report);
+    }
+
+    private static void copiaDataset(File origine, File destinazione) throws IOException {
+        Files.copy(new File(origine, "index.txt").toPath(), new File(destinazione, "index.txt").toPath());
+
+        File contatti = new File(destinazione, "contacts");
+        contatti.mkdir();
+        File[] file = new File(origine, "contacts").listFiles();
+        if (file != null) {
+            for (File f : file) {
+                Files.copy(f.toPath(), new File(contatti, f.getName()).toPath());
+            }
+        }
+    }
+
+    private static void eliminaCartella(File cartella) {
+        File[] figli = cartella.listFiles();
+        if (figli != null) {
+            for (File f : figli) {
+                eliminaCartella(f);
+            }
+        }
+        cartella.delete();
+    }
+
+    private static void generaDataset(int contatti) throws IOException {
+        ArchivioPersone persone = new ArchivioPersone();
+        int[] indici = new int[contatti];
+        for (int i = 0; i < contatti; i++) {
+            persone.add(new Persona(
+                NOMI[random.nextInt(NOMI.length)],
+                COGNOMI[i % COGNOMI.length] + (i / COGNOMI.length),
+                CITTA[random.nextInt(CITTA.length)],
+                "3" + (100000000 + random.nextInt(900000000)),
+                18 + random.nextInt(70)));
+            indici[i] = i;
+        }
+        FileManager.salvaPersone(persone, indici, Collections.emptyList());
+    }
+
+    private static Thread avviaCampionatore() {
+        Thread campionatore = new Thread(() -> {
+            while (campionamentoAttivo) {
+                long inviato = System.nanoTime();
+                CountDownLatch eseguito = new CountDownLatch(1);
+                EventQueue.invokeLater(() -> {
+                    latenzaEdt.registra(System.nanoTime() - inviato, INTERVALLO_CAMPIONE_NS);
+                    eseguito.countDown();
+                });
+
+                try {
+                    eseguito.await();
+                    Thread.sleep(INTERVALLO_CAMPIONE_NS / 1_000_000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "campionatore-edt");
+        campionatore.setDaemon(true);
+        campionatore.start();
+        return campionatore;
+    }
+
+    private static void attendiAvvio() throws Exception {
+        RubricaMain app = attendi("finestra principale", () -> {
+            for (Frame frame : Frame.getFrames()) {
+                if (frame instanceof RubricaMain && frame.isShowing()) {
+                    return (RubricaMain) frame;
+                }
+            }
+            return null;
+        });
+
+        suEdt(() -> {
+            tabella = trova(app, JTable.class, t -> true);
+            searchField = trova(app, JTextField.class, t -> true);
+            btnNuovo = trova(app, JButton.class, b -> "Nuovo".equals(b.getText()));
+            return null;
+        });
+
+        attendi("fine caricamento", () -> btnNuovo.isEnabled() ? Boolean.TRUE : null);
+    }
+
+    private static void eseguiAzione() throws Exception {
+        int scelta = random.nextInt(100);
+        int righe = suEdt(() -> tabella.getRowCount());
+
+        if (scelta < 40 && righe > 0) {
+            digitaRicerca(righe);
+        } else if (scelta < 60) {
+            ordina();
+        } else if (scelta < 75 || righe == 0) {
+            nuovaPersona(righe);
+        } else if (scelta < 90) {
+            modificaPersona(righe);
+        } else {
+            eliminaPersone(righe);
+        }
+    }
+
+    private static void digitaRicerca(int righe) throws Exception {
+        int riga = random.nextInt(righe);
+        String cognome = suEdt(() -> (String) tabella.getValueAt(riga, 1));
+        String testo = cognome.substring(0, Math.min(cognome.length(), 1 + random.nextInt(4)));
+
+        for (int i = 1; i <= testo.length(); i++) {
+            digita(testo.substring(0, i), testo.charAt(i - 1));
+        }
+
+        String primaRiga = suEdt(() -> tabella.getRowCount() == 0 ? "" :
+            tabella.getValueAt(0, 0) + " " + tabella.getValueAt(0, 1) + " " + tabella.getValueAt(0, 2));
+        verifica(primaRiga.toLowerCase().contains(testo.toLowerCase()),
+                 "la ricerca di \"" + testo + "\" non ha filtrato la tabella");
+
+        digita("", '\b');
+        verifica(suEdt(() -> tabella.getRowCount()) == righe, "svuotare la ricerca non ha ripristinato la tabella");
+    }
+
+    private static void digita(String contenuto, char carattere) throws Exception {
+        long inizio = System.nanoTime();
+        SwingUtilities.invokeLater(() -> {
+            searchField.setText(contenuto);
+            searchField.dispatchEvent(new KeyEvent(searchField, KeyEvent.KEY_RELEASED,
+                System.currentTimeMillis(), 0, KeyEvent.VK_UNDEFINED, carattere));
+        });
+        attendiEdt();
+        registra("digitazione", inizio);
+    }
+
+    private static void ordina() throws Exception {
+        int colonna = random.nextInt(3);
+
+        long inizio = System.nanoTime();
+        suEdt(() -> {
+            tabella.getRowSorter().toggleSortOrder(colonna);
+            return null;
+        });
+        attendiEdt();
+        registra("ordina", inizio);
+    }
+
+    private static void nuovaPersona(int righe) throws Exception {
+        contatoreNuovi++;
+        String[] valori = {
+            NOMI[random.nextInt(NOMI.length)],
+            "Carico" + contatoreNuovi,
+            CITTA[random.nextInt(CITTA.length)],
+            "3" + (100000000 + random.nextInt(900000000)),
+            String.valueOf(18 + random.nextInt(70))
+        };
+
+        long inizio = System.nanoTime();
+        CountDownLatch fine = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            btnNuovo.doClick(0);
+            fine.countDown();
+        });
+
+        EditorPersona editor = attendi("editor", () -> finestra(EditorPersona.class));
+        registra("apertura_editor", inizio);
+
+        suEdt(() -> {
+            List<JTextField> campi = campiTesto(editor);
+            for (int i = 0; i < valori.length; i++) {
+                campi.get(i).setText(valori[i]);
+            }
+            return null;
+        });
+
+        long salvataggio = System.nanoTime();
+        premi(editor, "Salva");
+        attendiLatch(fine);
+        registra("nuovo", salvataggio);
+        verifica(suEdt(() -> tabella.getRowCount()) == righe + 1, "il nuovo contatto non è stato aggiunto");
+    }
+
+    private static void modificaPersona(int righe) throws Exception {
+        int riga = random.nextInt(righe);
+        String citta = CITTA[random.nextInt(CITTA.length)];
+
+        long inizio = System.nanoTime();
+        CountDownLatch fine = scegliDalMenu(riga, riga, "Modifica");
+
+        EditorPersona editor = attendi("editor", () -> finestra(EditorPersona.class));
+        registra("apertura_editor", inizio);
+
+        suEdt(() -> {
+            campiTesto(editor).get(2).setText(citta);
+            return null;
+        });
+
+        long salvataggio = System.nanoTime();
+        premi(editor, "Salva");
+        attendiLatch(fine);
+        registra("modifica", salvataggio);
+        verifica(suEdt(() -> tabella.getRowCount()) == righe, "la modifica ha cambiato il numero di contatti");
+    }
+
+    private static void eliminaPersone(int righe) throws Exception {
+        int prima = random.nextInt(righe);
+        int ultima = Math.min(righe - 1, prima + random.nextInt(5));
+
+        long inizio = System.nanoTime();
+        CountDownLatch fine = scegliDalMenu(prima, ultima, "Elimina");
+
+        JOptionPane conferma = attendi("conferma eliminazione",
+            () -> trovaInFinestre(JOptionPane.class, p -> true));
+        registra("apertura_conferma", inizio);
+
+        long eliminazione = System.nanoTime();
+        suEdt(() -> {
+            conferma.setValue(JOptionPane.YES_OPTION);
+            return null;
+        });
+        attendiLatch(fine);
+        registra("elimina", eliminazione);
+        verifica(suEdt(() -> tabella.getRowCount()) == righe - (ultima - prima + 1),
+                 "l'eliminazione non ha rimosso le righe selezionate");
+    }
+
+    private static CountDownLatch scegliDalMenu(int prima, int ultima, String voce) throws Exception {
+        suEdt(() -> {
+            tabella.setRowSelectionInterval(prima, ultima);
+            Rectangle cella = tabella.getCellRect(prima, 0, true);
+            tabella.scrollRectToVisible(cella);
+            tabella.dispatchEvent(new MouseEvent(tabella, MouseEvent.MOUSE_PRESSED, System.currentTimeMillis(),
+                InputEvent.BUTTON3_DOWN_MASK, (int) cella.getCenterX(), (int) cella.getCenterY(),
+                1, true, MouseEvent.BUTTON3));
+            return null;
+        });
+
+        JMenuItem menuItem = attendi("menu " + voce,
+            () -> trovaInFinestre(JMenuItem.class, m -> voce.equals(m.getText())));
+
+        CountDownLatch fine = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            menuItem.getParent().setVisible(false);
+            menuItem.doClick(0);
+            fine.countDown();
+        });
+        return fine;
+    }
+
+    private static void premi(Container contenitore, String testo) throws Exception {
+        JButton bottone = suEdt(() -> trova(contenitore, JButton.class, b -> testo.equals(b.getText())));
+        // doClick() senza argomenti tiene il pulsante premuto per 68 ms sull'EDT: sarebbe
+        // uno stallo introdotto dal test stesso
+        SwingUtilities.invokeLater(() -> bottone.doClick(0));
+    }
+
+    private static List<JTextField> campiTesto(Container contenitore) {
+        List<JTextField> campi = new ArrayList<>();
+        for (Component c : contenitore.getComponents()) {
+            if (c instanceof JTextField) {
+                campi.add((JTextField) c);
+            } else if (c instanceof Container) {
+                campi.addAll(campiTesto((Container) c));
+            }
+        }
+        return campi;
+    }
+
+    private static <T extends Window> T finestra(Class<T> tipo) {
+        for (Window w : Window.getWindows()) {
+            if (tipo.isInstance(w) && w.isShowing()) {
+                return tipo.cast(w);
+            }
+        }
+        return null;
+    }
+
+    private static <T extends Component> T trovaInFinestre(Class<T> tipo, Predicate<T> condizione) {
+        for (Window w : Window.getWindows()) {
+            if (w.isShowing()) {
+                T trovato = trova(w, tipo, condizione);
+                if (trovato != null && trovato.isShowing()) {
+                    return trovato;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static <T extends Component> T trova(Container radice, Class<T> tipo, Predicate<T> condizione) {
+        for (Component c : radice.getComponents()) {
+            if (tipo.isInstance(c) && condizione.test(tipo.cast(c))) {
+                return tipo.cast(c);
+            }
+            if (c instanceof Container) {
+                T trovato = trova((Container) c, tipo, condizione);
+                if (trovato != null) {
+                    return trovato;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static <T> T attendi(String descrizione, Callable<T> condizione) throws Exception {
+        long scadenza = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < scadenza) {
+            cambiamentiUi.drainPermits();
+            T risultato = suEdt(condizione);
+            if (risultato != null) {
+                return risultato;
+            }
+            cambiamentiUi.tryAcquire(INTERVALLO_CONTROLLO_MS, TimeUnit.MILLISECONDS);
+        }
+        throw new IllegalStateException("Timeout in attesa di: " + descrizione);
+    }
+
+    private static void verifica(boolean condizione, String messaggio) {
+        if (!condizione) {
+            throw new IllegalStateException("Verifica fallita: " + messaggio);
+        }
+    }
+
+    private static void attendiLatch(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Timeout in attesa della fine dell'azione");
+        }
+    }
+
+    private static void attendiEdt() throws Exception {
+        SwingUtilities.invokeAndWait(() -> { });
+    }
+
+    private static <T> T suEdt(Callable<T> azione) throws Exception {
+        FutureTask<T> task = new FutureTask<>(azione);
+        SwingUtilities.invokeAndWait(task);
+        return task.get();
+    }
+
+    private static void registra(String azione, long inizio) {
+        tempiAzioni.get(azione).registra(System.nanoTime() - inizio, 0);
+    }
+
+    private static void scriviReport(File file, int contatti, int azioni, long caricamentoNs) throws IOException {
+        String versione = versioneRubrica();
+
+        try (PrintStream ps = new PrintStream(new FileOutputStream(file))) {
+            ps.println("{");
+            ps.println("  \"versione\": " + (versione == null ? "null" : "\"" + versione + "\"") + ",");
+            ps.println("  \"java\": \"" + System.getProperty("java.version") + "\",");
+            ps.println("  \"contatti\": " + contatti + ",");
+            ps.println("  \"azioni\": " + azioni + ",");
+            ps.println("  \"caricamento_ms\": " + caricamentoNs / 1_000_000 + ",");
+            ps.println("  \"unita\": \"us\",");
+            ps.println("  \"latenza_edt\": " + latenzaEdt.json() + ",");
+            ps.println("  \"tempi_azioni\": {");
+
+            Iterator<Map.Entry<String, Istogramma>> it = tempiAzioni.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Istogramma> voce = it.next();
+                ps.println("    \"" + voce.getKey() + "\": " + voce.getValue().json() + (it.hasNext() ? "," : ""));
+            }
+
+            ps.println("  }");
+            ps.println("}");
+
+            if (ps.checkError()) {
+                throw new IOException("Impossibile scrivere il report " + file);
+            }
+        }
+    }
+
+    // RubricaMain sta nel package senza nome, per cui getPackage() non espone gli
+    // attributi del manifest: la versione va letta dal jar
+    private static String versioneRubrica() {
+        try {
+            File origine = new File(RubricaMain.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            try (JarFile jar = new JarFile(origine)) {
+                Manifest manifest = jar.getManifest();
+                return manifest == null ? null : manifest.getMainAttributes().getValue("Implementation-Version");
+            }
+        } catch (IOException | URISyntaxException e) {
+            // Classi non impacchettate in un jar
+            return null;
+        }
+    }
+
+    private static class Istogramma {
+        private long[] valori = new long[1024];
+        private int conteggio = 0;
+
+        // Come recordValueWithExpectedInterval di HdrHistogram: un campione in ritardo di
+        // molti intervalli aggiunge anche i campioni che lo stallo ha impedito di prendere
+        synchronized void registra(long valoreNs, long intervalloAttesoNs) {
+            aggiungi(valoreNs);
+            if (intervalloAttesoNs > 0) {
+                for (long mancante = valoreNs - intervalloAttesoNs; mancante >= intervalloAttesoNs;
+                     mancante -= intervalloAttesoNs) {
+                    aggiungi(mancante);
+                }
+            }
+        }
+
+        private void aggiungi(long valoreNs) {
+            if (conteggio == valori.length) {
+                valori = Arrays.copyOf(valori, conteggio * 2);
+            }
+            valori[conteggio++] = valoreNs;
+        }
+
+        synchronized String json() {
+            long[] ordinati = Arrays.copyOf(valori, conteggio);
+            Arrays.sort(ordinati);
+
+            long somma = 0;
+            for (long v : ordinati) {
+                somma += v;
+            }
+
+            return "{\"campioni\": " + conteggio +
+                   ", \"min\": " + micro(ordinati, 0.0) +
+                   ", \"p50\": " + micro(ordinati, 50.0) +
+                   ", \"p90\": " + micro(ordinati, 90.0) +
+                   ", \"p99\": " + micro(ordinati, 99.0) +
+                   ", \"p99_9\": " + micro(ordinati, 99.9) +
+                   ", \"max\": " + micro(ordinati, 100.0) +
+                   ", \"media\": " + (conteggio == 0 ? 0 : somma / conteggio / 1000) + "}";
+        }
+
+        private static long micro(long[] ordinati, double percentile) {
+            if (ordinati.length == 0) {
+                return 0;
+            }
+            int indice = (int) Math.ceil(percentile / 100.0 * ordinati.length) - 1;
+            return ordinati[Math.max(0, Math.min(indice, ordinati.length - 1))] / 1000;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class FileManager {
-    private static final String CONTACTS_DIR = "contacts";
-    private static final String INDEX_FILE = "index.txt";
+    private static final String BASE_DIR = System.getProperty("rubrica.dir", ".");
+    private static final String CONTACTS_DIR = BASE_DIR + File.separator + "contacts";
+    private static final String INDEX_FILE = BASE_DIR + File.separator + "index.txt";
 
     static {
         File dir = new File(CONTACTS_DIR);
@@ -12,29 +15,28 @@ public class FileManager {
         }
     }
 
-    public static Vector<Persona> caricaPersone() {
-        Vector<Persona> persone = new Vector<>();
+    public static void caricaPersone(Consumer<Persona> consumer) throws IOException {
         File indexFile = new File(INDEX_FILE);
+        if (!indexFile.exists()) {
+            return;
+        }
 
-        try {
-            if (indexFile.exists()) {
-                try (Scanner scanner = new Scanner(indexFile)) {
-                    while (scanner.hasNextLine()) {
-                        String filename = scanner.nextLine().trim();
-                        if (!filename.isEmpty()) {
-                            Persona persona = loadPersonaFromFile(filename);
-                            if (persona != null) {
-                                persone.add(persona);
-                            }
-                        }
+        try (Scanner scanner = new Scanner(indexFile)) {
+            while (scanner.hasNextLine()) {
+                String filename = scanner.nextLine().trim();
+                if (!filename.isEmpty()) {
+                    Persona persona = loadPersonaFromFile(filename);
+                    if (persona != null) {
+                        persona.setFile(filename);
+                        consumer.accept(persona);
                     }
                 }
             }
-        } catch (Exception e) {
-            System.err.println("Errore durante la lettura dell'indice: " + e.getMessage());
-        }
 
-        return persone;
+            if (scanner.ioException() != null) {
+                throw scanner.ioException();
+            }
+        }
     }
 
     private static Persona loadPersonaFromFile(String filename) {
@@ -86,100 +88,93 @@ public class FileManager {
         }
     }
 
-    public static void salvaPersone(Vector<Persona> persone) {
-        try {
-            PrintStream indexPs = new PrintStream(new FileOutputStream(INDEX_FILE));
-
-            Set<String> existingFiles = getAllContactFiles();
-            Set<String> updatedFiles = new HashSet<>();
+    public static void salvaPersone(ArchivioPersone persone, int[] modificati,
+                                    Collection<String> fileRimossi) throws IOException {
+        Set<String> unusedFiles = new HashSet<>(fileRimossi);
+        String[] nuoviNomi = new String[modificati.length];
+        Map<Integer, String> nomiPerIndice = new HashMap<>();
+        Set<String> riservati = new HashSet<>();
+        File tmpIndex = new File(INDEX_FILE + ".tmp");
+        int scritti = 0;
+        int spostati = 0;
 
-            for (Persona persona : persone) {
-                String filename = getFilenameForPersona(persona);
+        try {
+            // I contatti vanno prima in file temporanei: finché l'indice non è stato
+            // sostituito su disco resta valida la versione precedente della rubrica
+            for (int k = 0; k < modificati.length; k++) {
+                Persona persona = persone.get(modificati[k]);
+                String attuale = persone.getFile(modificati[k]);
+                String filename = attuale != null && isFilenameForPersona(attuale, persona)
+                    ? attuale : getFilenameForPersona(persona, riservati);
+
+                if (attuale != null && !attuale.equals(filename)) {
+                    unusedFiles.add(attuale);
+                }
+                nuoviNomi[k] = filename;
+                nomiPerIndice.put(modificati[k], filename);
+                riservati.add(filename);
                 savePersonaToFile(persona, filename);
-                indexPs.println(filename);
-                updatedFiles.add(filename);
+                scritti++;
             }
 
-            indexPs.close();
-
-            cleanupUnusedFiles(existingFiles, updatedFiles);
-
-        } catch (FileNotFoundException e) {
-            System.err.println("Impossibile scrivere sull'indice: " + e.getMessage());
-        }
-    }
+            try (PrintStream indexPs = new PrintStream(new BufferedOutputStream(new FileOutputStream(tmpIndex)))) {
+                for (int i = 0; i < persone.size(); i++) {
+                    String filename = nomiPerIndice.getOrDefault(i, persone.getFile(i));
+                    indexPs.println(filename);
+                    unusedFiles.remove(filename);
+                }
 
-    public static void deletePersona(Persona persona) {
-        String filename = findFilenameForPersona(persona);
-        if (filename != null) {
-            File file = new File(CONTACTS_DIR + File.separator + filename);
-            if (file.exists()) {
-                boolean deleted = file.delete();
-                if (!deleted) {
-                    System.err.println("Impossibile eliminare il file: " + filename);
+                if (indexPs.checkError()) {
+                    throw new IOException("Impossibile scrivere l'indice " + tmpIndex);
                 }
             }
-        }
-    }
 
-    private static String findFilenameForPersona(Persona persona) {
-        File dir = new File(CONTACTS_DIR);
-        File[] files = dir.listFiles((d, name) -> name.startsWith(persona.getNome() + "-" + persona.getCognome()));
-
-        if (files != null) {
-            for (File file : files) {
-                try (Scanner scanner = new Scanner(file)) {
-                    String nome = "", cognome = "";
-
-                    while (scanner.hasNextLine()) {
-                        String line = scanner.nextLine();
-                        String[] parts = line.split(":", 2);
-
-                        if (parts.length == 2) {
-                            String key = parts[0].trim();
-                            String value = parts[1].trim();
-
-                            if ("nome".equalsIgnoreCase(key)) {
-                                nome = value;
-                            } else if ("cognome".equalsIgnoreCase(key)) {
-                                cognome = value;
-                            }
-
-                            if (!nome.isEmpty() && !cognome.isEmpty()) {
-                                if (nome.equals(persona.getNome()) && cognome.equals(persona.getCognome())) {
-                                    return file.getName();
-                                }
-                                break;
-                            }
-                        }
-                    }
-                } catch (FileNotFoundException e) {
-                    System.err.println("File non trovato: " + e.getMessage());
+            for (; spostati < modificati.length; spostati++) {
+                sostituisci(new File(fileContatto(nuoviNomi[spostati]) + ".tmp"), fileContatto(nuoviNomi[spostati]));
+            }
+            sostituisci(tmpIndex, new File(INDEX_FILE));
+        } catch (IOException e) {
+            for (int k = 0; k < scritti; k++) {
+                if (k >= spostati) {
+                    new File(fileContatto(nuoviNomi[k]) + ".tmp").delete();
+                } else if (!nuoviNomi[k].equals(persone.getFile(modificati[k]))) {
+                    fileContatto(nuoviNomi[k]).delete();
                 }
             }
+            tmpIndex.delete();
+            throw e;
+        }
+
+        for (int k = 0; k < modificati.length; k++) {
+            persone.setFile(modificati[k], nuoviNomi[k]);
         }
 
-        return null;
+        cleanupUnusedFiles(unusedFiles);
     }
 
-    private static Set<String> getAllContactFiles() {
-        Set<String> files = new HashSet<>();
-        File dir = new File(CONTACTS_DIR);
-        File[] contactFiles = dir.listFiles((d, name) -> name.endsWith(".txt"));
+    public static void esportaPersone(List<Persona> persone, File file) throws IOException {
+        try (PrintStream ps = new PrintStream(new FileOutputStream(file))) {
+            for (Persona persona : persone) {
+                ps.println(persona);
+            }
 
-        if (contactFiles != null) {
-            for (File file : contactFiles) {
-                files.add(file.getName());
+            if (ps.checkError()) {
+                throw new IOException("Errore di scrittura su " + file);
             }
         }
+    }
 
-        return files;
+    private static File fileContatto(String filename) {
+        return new File(CONTACTS_DIR + File.separator + filename);
     }
 
-    private static void cleanupUnusedFiles(Set<String> existingFiles, Set<String> updatedFiles) {
-        existingFiles.removeAll(updatedFiles);
+    private static void sostituisci(File sorgente, File destinazione) throws IOException {
+        Files.move(sorgente.toPath(), destinazione.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-        for (String filename : existingFiles) {
+    private static void cleanupUnusedFiles(Set<String> unusedFiles) {
+        for (String filename : unusedFiles) {
             File file = new File(CONTACTS_DIR + File.separator + filename);
             if (file.exists()) {
                 boolean deleted = file.delete();
@@ -190,8 +185,9 @@ public class FileManager {
         }
     }
 
-    private static void savePersonaToFile(Persona persona, String filename) {
-        File file = new File(CONTACTS_DIR + File.separator + filename);
+    private static void savePersonaToFile(Persona persona, String filename) throws IOException {
+        File file = new File(fileContatto(filename) + ".tmp");
+        boolean errore;
 
         try (PrintStream ps = new PrintStream(new FileOutputStream(file))) {
             ps.println("Nome: " + persona.getNome());
@@ -199,19 +195,23 @@ public class FileManager {
             ps.println("Indirizzo: " + persona.getIndirizzo());
             ps.println("Telefono: " + persona.getTelefono());
             ps.println("Eta: " + persona.getEta());
-        } catch (FileNotFoundException e) {
-            System.err.println("Impossibile scrivere il file contatto: " + e.getMessage());
+            errore = ps.checkError();
+        }
+
+        if (errore) {
+            file.delete();
+            throw new IOException("Impossibile scrivere il file contatto " + filename);
         }
     }
 
-    private static String getFilenameForPersona(Persona persona) {
-        String baseFilename = persona.getNome() + "-" + persona.getCognome() + ".txt";
-        String filename = baseFilename;
+    private static String getFilenameForPersona(Persona persona, Set<String> riservati) {
+        String baseFilename = persona.getNome() + "-" + persona.getCognome();
+        String filename = baseFilename + ".txt";
         File file = new File(CONTACTS_DIR + File.separator + filename);
 
         int counter = 1;
-        while (file.exists() && !isFileForPersona(file, persona)) {
-            filename = persona.getNome() + "-" + persona.getCognome() + "-" + counter + ".txt";
+        while (file.exists() || riservati.contains(filename)) {
+            filename = baseFilename + "-" + counter + ".txt";
             file = new File(CONTACTS_DIR + File.separator + filename);
             counter++;
         }
@@ -219,34 +219,16 @@ public class FileManager {
         return filename;
     }
 
-    private static boolean isFileForPersona(File file, Persona persona) {
-        try (Scanner scanner = new Scanner(file)) {
-            String nome = "", cognome = "";
-
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] parts = line.split(":", 2);
-
-                if (parts.length == 2) {
-                    String key = parts[0].trim();
-                    String value = parts[1].trim();
-
-                    if ("nome".equalsIgnoreCase(key)) {
-                        nome = value;
-                    } else if ("cognome".equalsIgnoreCase(key)) {
-                        cognome = value;
-                    }
-
-                    if (!nome.isEmpty() && !cognome.isEmpty()) {
-                        return nome.equals(persona.getNome()) && cognome.equals(persona.getCognome());
-                    }
-                }
-            }
-        } catch (FileNotFoundException e) {
+    private static boolean isFilenameForPersona(String filename, Persona persona) {
+        String baseFilename = persona.getNome() + "-" + persona.getCognome();
+        if (filename.equals(baseFilename + ".txt")) {
+            return true;
+        }
+        if (!filename.startsWith(baseFilename + "-") || !filename.endsWith(".txt")) {
             return false;
         }
 
-        return false;
+        String counter = filename.substring(baseFilename.length() + 1, filename.length() - ".txt".length());
+        return !counter.isEmpty() && counter.chars().allMatch(Character::isDigit);
     }
-
 }
@@ -4,6 +4,7 @@ public class Persona {
     private String indirizzo;
     private String telefono;
     private int eta;
+    private String file;
 
     public Persona(String nome, String cognome, String indirizzo, String telefono, int eta) {
         this.nome = nome;
@@ -13,6 +14,11 @@ public class Persona {
         this.eta = eta;
     }
 
+    public Persona(Persona altra) {
+        this(altra.nome, altra.cognome, altra.indirizzo, altra.telefono, altra.eta);
+        this.file = altra.file;
+    }
+
     public Persona() {
         this.nome = "";
         this.cognome = "";
@@ -41,6 +47,10 @@ public class Persona {
         return eta;
     }
 
+    public String getFile() {
+        return file;
+    }
+
     public void setNome(String nome) {
         this.nome = nome;
     }
@@ -61,6 +71,10 @@ public class Persona {
         this.eta = eta;
     }
 
+    public void setFile(String file) {
+        this.file = file;
+    }
+
     @Override
     public String toString() {
         return nome + ";" + cognome + ";" + indirizzo + ";" + telefono + ";" + eta;
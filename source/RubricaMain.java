@@ -2,28 +2,186 @@ import javax.swing.*;
 import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.Vector;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 public class RubricaMain extends JFrame {
-    private Vector<Persona> persone;
-    private Vector<Persona> filteredPersone;
+    private static boolean benchmarkAvvio = false;
+    private static int limiteCache = 0;
+
+    private ArchivioPersone persone;
+    private int[] filtrati;
+    private int numFiltrati;
+    private String queryCorrente = "";
     private JTable tabella;
-    private DefaultTableModel model;
+    private PersoneTableModel model;
     private JTextField searchField;
     private JLabel statusLabel;
+    private JButton btnNuovo;
     private JPopupMenu popupMenu;
+    private JMenuItem menuItemView;
+    private JMenuItem menuItemEdit;
+    private JMenuItem menuItemBulkEdit;
+    private JMenuItem menuItemDelete;
+
+    private boolean caricamentoCompletato = false;
+    private Throwable erroreCaricamento;
+    private long primoPaintMs = -1;
+    private long caricamentoMs = -1;
 
     public RubricaMain() {
         super("Rubrica Telefonica");
 
-        persone = FileManager.caricaPersone();
-        filteredPersone = new Vector<>(persone);
+        persone = limiteCache > 0 ? new ArchivioPersone(limiteCache) : new ArchivioPersone();
 
         initUI();
 
         setSize(700, 500);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        caricaContatti();
+    }
+
+    private class PersoneTableModel extends AbstractTableModel {
+        private final String[] columns = {"Nome", "Cognome", "Telefono"};
+
+        @Override
+        public int getRowCount() {
+            return righeVisualizzate();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            int indice = indicePersona(row);
+            switch (column) {
+                case 0:
+                    return persone.getNome(indice);
+                case 1:
+                    return persone.getCognome(indice);
+                default:
+                    return persone.getTelefono(indice);
+            }
+        }
+    }
+
+    private void caricaContatti() {
+        SwingWorker<Void, Persona> loader = new SwingWorker<Void, Persona>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                FileManager.caricaPersone(p -> publish(p));
+                return null;
+            }
+
+            @Override
+            protected void process(List<Persona> chunk) {
+                if (erroreCaricamento != null) {
+                    return;
+                }
+
+                int primaRiga = righeVisualizzate();
+
+                try {
+                    for (Persona p : chunk) {
+                        persone.add(p);
+                        if (filtrati != null && corrisponde(persone.size() - 1, queryCorrente)) {
+                            aggiungiFiltrato(persone.size() - 1);
+                        }
+                    }
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    erroreCaricamento = e;
+                    cancel(true);
+                }
+
+                if (righeVisualizzate() > primaRiga) {
+                    model.fireTableRowsInserted(primaRiga, righeVisualizzate() - 1);
+                }
+                updateStatusBar();
+            }
+
+            @Override
+            protected void done() {
+                if (erroreCaricamento == null) {
+                    try {
+                        get();
+                    } catch (ExecutionException e) {
+                        erroreCaricamento = e.getCause();
+                    } catch (InterruptedException | CancellationException e) {
+                        erroreCaricamento = e;
+                    }
+                }
+
+                if (erroreCaricamento != null) {
+                    caricamentoFallito();
+                    return;
+                }
+
+                caricamentoCompletato = true;
+                btnNuovo.setEnabled(true);
+                updateStatusBar();
+
+                if (benchmarkAvvio) {
+                    caricamentoMs = tempoDallAvvio();
+                    verificaBenchmarkAvvio();
+                }
+            }
+        };
+        loader.execute();
+    }
+
+    private void caricamentoFallito() {
+        updateStatusBar();
+
+        if (benchmarkAvvio) {
+            System.out.println("errore_caricamento=" + erroreCaricamento);
+            System.exit(1);
+        }
+
+        JOptionPane.showMessageDialog(this,
+            "Errore durante il caricamento dei contatti: " + erroreCaricamento +
+            "\nLe modifiche sono disabilitate per non sovrascrivere la rubrica.",
+            "Errore",
+            JOptionPane.ERROR_MESSAGE);
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+
+        if (benchmarkAvvio && primoPaintMs == -1) {
+            primoPaintMs = tempoDallAvvio();
+            verificaBenchmarkAvvio();
+        }
+    }
+
+    private static long tempoDallAvvio() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    private void verificaBenchmarkAvvio() {
+        if (primoPaintMs == -1 || caricamentoMs == -1) {
+            return;
+        }
+
+        System.out.println("primo_paint_ms=" + primoPaintMs);
+        System.out.println("caricamento_completato_ms=" + caricamentoMs);
+        System.out.println("contatti=" + persone.size());
+        System.exit(0);
     }
 
     private void initUI() {
@@ -40,18 +198,10 @@ public class RubricaMain extends JFrame {
         searchPanel.add(searchLabel, BorderLayout.WEST);
         searchPanel.add(searchField, BorderLayout.CENTER);
 
-        String[] columns = {"Nome", "Cognome", "Telefono"};
-        model = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-
-        updateTable();
+        model = new PersoneTableModel();
 
         tabella = new JTable(model);
-        tabella.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        tabella.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         TableRowSorter<TableModel> sorter = new TableRowSorter<>(model);
         tabella.setRowSorter(sorter);
 
@@ -60,7 +210,8 @@ public class RubricaMain extends JFrame {
         createContextMenu();
 
         JPanel buttonPanel = new JPanel(new BorderLayout(5, 0));
-        JButton btnNuovo = new JButton("Nuovo");
+        btnNuovo = new JButton("Nuovo");
+        btnNuovo.setEnabled(false);
 
         btnNuovo.addActionListener(e -> nuovaPersona());
 
@@ -84,16 +235,22 @@ public class RubricaMain extends JFrame {
     private void createContextMenu() {
         popupMenu = new JPopupMenu();
 
-        JMenuItem menuItemView = new JMenuItem("Visualizza");
-        JMenuItem menuItemEdit = new JMenuItem("Modifica");
-        JMenuItem menuItemDelete = new JMenuItem("Elimina");
+        menuItemView = new JMenuItem("Visualizza");
+        menuItemEdit = new JMenuItem("Modifica");
+        menuItemBulkEdit = new JMenuItem("Modifica campo...");
+        JMenuItem menuItemExport = new JMenuItem("Esporta...");
+        menuItemDelete = new JMenuItem("Elimina");
 
         menuItemView.addActionListener(e -> visualizzaPersona());
         menuItemEdit.addActionListener(e -> modificaPersona());
+        menuItemBulkEdit.addActionListener(e -> modificaCampoPersone());
+        menuItemExport.addActionListener(e -> esportaPersone());
         menuItemDelete.addActionListener(e -> eliminaPersona());
 
         popupMenu.add(menuItemView);
         popupMenu.add(menuItemEdit);
+        popupMenu.add(menuItemBulkEdit);
+        popupMenu.add(menuItemExport);
         popupMenu.addSeparator();
         popupMenu.add(menuItemDelete);
 
@@ -115,12 +272,19 @@ public class RubricaMain extends JFrame {
             private void showPopup(MouseEvent e) {
                 int r = tabella.rowAtPoint(e.getPoint());
                 if (r >= 0 && r < tabella.getRowCount()) {
-                    tabella.setRowSelectionInterval(r, r);
+                    if (!tabella.isRowSelected(r)) {
+                        tabella.setRowSelectionInterval(r, r);
+                    }
                 } else {
                     tabella.clearSelection();
                 }
 
                 if (tabella.getSelectedRow() != -1) {
+                    boolean singola = tabella.getSelectedRowCount() == 1;
+                    menuItemView.setEnabled(singola);
+                    menuItemEdit.setEnabled(singola && caricamentoCompletato);
+                    menuItemBulkEdit.setEnabled(caricamentoCompletato);
+                    menuItemDelete.setEnabled(caricamentoCompletato);
                     popupMenu.show(e.getComponent(), e.getX(), e.getY());
                 }
             }
@@ -136,16 +300,16 @@ public class RubricaMain extends JFrame {
 
     private void filterContacts(String query) {
         query = query.toLowerCase();
-        filteredPersone.clear();
+        queryCorrente = query;
 
         if (query.isEmpty()) {
-            filteredPersone.addAll(persone);
+            filtrati = null;
         } else {
-            for (Persona p : persone) {
-                if (p.getNome().toLowerCase().contains(query) ||
-                    p.getCognome().toLowerCase().contains(query) ||
-                    p.getTelefono().toLowerCase().contains(query)) {
-                    filteredPersone.add(p);
+            filtrati = new int[16];
+            numFiltrati = 0;
+            for (int i = 0; i < persone.size(); i++) {
+                if (corrisponde(i, query)) {
+                    aggiungiFiltrato(i);
                 }
             }
         }
@@ -154,32 +318,59 @@ public class RubricaMain extends JFrame {
         updateStatusBar();
     }
 
-    private void updateTable() {
-        model.setRowCount(0);
+    private boolean corrisponde(int indice, String query) {
+        return query.isEmpty() ||
+               persone.getNome(indice).toLowerCase().contains(query) ||
+               persone.getCognome(indice).toLowerCase().contains(query) ||
+               persone.getTelefono(indice).toLowerCase().contains(query);
+    }
 
-        for (Persona p : filteredPersone) {
-            model.addRow(new Object[] {p.getNome(), p.getCognome(), p.getTelefono()});
+    private void aggiungiFiltrato(int indice) {
+        if (numFiltrati == filtrati.length) {
+            filtrati = Arrays.copyOf(filtrati, numFiltrati * 2);
         }
+        filtrati[numFiltrati++] = indice;
+    }
+
+    private int righeVisualizzate() {
+        return filtrati == null ? persone.size() : numFiltrati;
+    }
+
+    private int indicePersona(int modelRow) {
+        return filtrati == null ? modelRow : filtrati[modelRow];
+    }
+
+    private void updateTable() {
+        model.fireTableDataChanged();
     }
 
     private void updateStatusBar() {
         int selectedRow = tabella.getSelectedRow();
-        if (selectedRow != -1) {
-            int modelRow = tabella.convertRowIndexToModel(selectedRow);
-            Persona selected = filteredPersone.get(modelRow);
-            statusLabel.setText("Contatti totali: " + persone.size() + " | Selezionato: " +
-                               selected.getNome() + " " + selected.getCognome());
+        String testo;
+        if (tabella.getSelectedRowCount() > 1) {
+            testo = "Contatti totali: " + persone.size() + " | Selezionati: " + tabella.getSelectedRowCount();
+        } else if (selectedRow != -1) {
+            int indice = indicePersona(tabella.convertRowIndexToModel(selectedRow));
+            testo = "Contatti totali: " + persone.size() + " | Selezionato: " +
+                    persone.getNome(indice) + " " + persone.getCognome(indice);
         } else {
-            statusLabel.setText("Contatti totali: " + persone.size() + " | Visualizzati: " + filteredPersone.size());
+            testo = "Contatti totali: " + persone.size() + " | Visualizzati: " + righeVisualizzate();
+        }
+
+        if (erroreCaricamento != null) {
+            testo += " | Caricamento non riuscito";
+        } else if (!caricamentoCompletato) {
+            testo += " | Caricamento in corso...";
         }
+        statusLabel.setText(testo);
     }
 
     private void visualizzaPersona() {
         int selectedRow = tabella.getSelectedRow();
 
         if (selectedRow != -1) {
-            int modelRow = tabella.convertRowIndexToModel(selectedRow);
-            Persona personaSelezionata = filteredPersone.get(modelRow);
+            int indice = indicePersona(tabella.convertRowIndexToModel(selectedRow));
+            Persona personaSelezionata = persone.get(indice);
 
             EditorPersona editor = new EditorPersona(this, personaSelezionata, true);
             editor.setVisible(true);
@@ -192,11 +383,63 @@ public class RubricaMain extends JFrame {
 
         if (editor.isSaved()) {
             Persona nuovaPersona = editor.getPersona();
-            persone.add(nuovaPersona);
+            try {
+                persone.add(nuovaPersona);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                modificaNonRiuscita(e);
+                return;
+            }
+
+            if (!salvaPersone(new int[] {persone.size() - 1}, Collections.emptyList())) {
+                persone.remove(persone.size() - 1);
+            }
             filterContacts(searchField.getText());
+        }
+    }
+
+    private void modificaNonRiuscita(Throwable e) {
+        JOptionPane.showMessageDialog(this,
+            "Impossibile aggiornare la rubrica: " + e +
+            "\nLa modifica non è stata salvata.",
+            "Errore",
+            JOptionPane.ERROR_MESSAGE);
+    }
 
-            FileManager.salvaPersone(persone);
+    private boolean salvaPersone(int[] modificati, Collection<String> fileRimossi) {
+        try {
+            FileManager.salvaPersone(persone, modificati, fileRimossi);
+            return true;
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Impossibile salvare la rubrica: " + e.getMessage() +
+                "\nLa modifica è stata annullata.",
+                "Errore",
+                JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+
+    private int[] indiciSelezionati() {
+        int[] righe = tabella.getSelectedRows();
+        int[] indici = new int[righe.length];
+        for (int i = 0; i < righe.length; i++) {
+            indici[i] = indicePersona(tabella.convertRowIndexToModel(righe[i]));
         }
+        return indici;
+    }
+
+    private List<Persona> personeSelezionate(int[] indici) {
+        return new AbstractList<Persona>() {
+            @Override
+            public Persona get(int i) {
+                return persone.get(indici[i]);
+            }
+
+            @Override
+            public int size() {
+                return indici.length;
+            }
+        };
     }
 
     private void modificaPersona() {
@@ -210,38 +453,148 @@ public class RubricaMain extends JFrame {
             return;
         }
 
-        int modelRow = tabella.convertRowIndexToModel(selectedRow);
-        Persona personaSelezionata = filteredPersone.get(modelRow);
+        int originalIndex = indicePersona(tabella.convertRowIndexToModel(selectedRow));
+        Persona personaSelezionata = new Persona(persone.get(originalIndex));
 
-        int originalIndex = persone.indexOf(personaSelezionata);
-        if (originalIndex == -1) {
-            for (int i = 0; i < persone.size(); i++) {
-                Persona p = persone.get(i);
-                if (p.getNome().equals(personaSelezionata.getNome()) &&
-                    p.getCognome().equals(personaSelezionata.getCognome()) &&
-                    p.getTelefono().equals(personaSelezionata.getTelefono())) {
-                    originalIndex = i;
-                    break;
-                }
+        EditorPersona editor = new EditorPersona(this, personaSelezionata, false);
+        editor.setVisible(true);
+
+        if (editor.isSaved()) {
+            Persona precedente;
+            try {
+                precedente = persone.set(originalIndex, editor.getPersona());
+            } catch (RuntimeException | OutOfMemoryError e) {
+                modificaNonRiuscita(e);
+                return;
+            }
+
+            if (!salvaPersone(new int[] {originalIndex}, Collections.emptyList())) {
+                persone.set(originalIndex, precedente);
             }
+            filterContacts(searchField.getText());
         }
+    }
 
-        EditorPersona editor = new EditorPersona(this, personaSelezionata, false);
-        editor.setVisible(true);
+    private void modificaCampoPersone() {
+        int[] indici = indiciSelezionati();
+
+        if (indici.length == 0) {
+            JOptionPane.showMessageDialog(this,
+                "Per modificare è necessario prima selezionare una persona",
+                "Attenzione",
+                JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        JComboBox<String> comboCampo = new JComboBox<>(new String[] {"Indirizzo", "Telefono", "Età"});
+        JTextField txtValore = new JTextField(20);
+
+        JPanel panel = new JPanel(new GridLayout(2, 2, 10, 10));
+        panel.add(new JLabel("Campo:"));
+        panel.add(comboCampo);
+        panel.add(new JLabel("Nuovo valore:"));
+        panel.add(txtValore);
+
+        int response = JOptionPane.showConfirmDialog(this,
+            panel,
+            "Modifica " + indici.length + " persone",
+            JOptionPane.OK_CANCEL_OPTION,
+            JOptionPane.PLAIN_MESSAGE);
 
-        if (editor.isSaved() && originalIndex != -1) {
-            persone.setElementAt(editor.getPersona(), originalIndex);
+        if (response != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        String valore = txtValore.getText();
+        int eta = 0;
+        if (comboCampo.getSelectedIndex() == 2) {
+            try {
+                eta = Integer.parseInt(valore);
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this,
+                    "L'età deve essere un numero intero",
+                    "Errore",
+                    JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
 
+        Persona[] precedenti = new Persona[indici.length];
+        int applicate = 0;
+        try {
+            for (; applicate < indici.length; applicate++) {
+                Persona p = new Persona(persone.get(indici[applicate]));
+                switch (comboCampo.getSelectedIndex()) {
+                    case 0:
+                        p.setIndirizzo(valore);
+                        break;
+                    case 1:
+                        p.setTelefono(valore);
+                        break;
+                    default:
+                        p.setEta(eta);
+                        break;
+                }
+                precedenti[applicate] = persone.set(indici[applicate], p);
+            }
+        } catch (RuntimeException | OutOfMemoryError e) {
+            ripristina(indici, precedenti, applicate);
             filterContacts(searchField.getText());
+            modificaNonRiuscita(e);
+            return;
+        }
+
+        if (!salvaPersone(indici, Collections.emptyList())) {
+            ripristina(indici, precedenti, applicate);
+        }
+        filterContacts(searchField.getText());
+    }
+
+    private void ripristina(int[] indici, Persona[] precedenti, int quante) {
+        for (int k = 0; k < quante; k++) {
+            persone.set(indici[k], precedenti[k]);
+        }
+    }
+
+    private void esportaPersone() {
+        int[] indici = indiciSelezionati();
+
+        if (indici.length == 0) {
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("contatti.txt"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        File file = chooser.getSelectedFile();
+        if (file.exists()) {
+            int response = JOptionPane.showConfirmDialog(this,
+                "Il file " + file.getName() + " esiste già. Sovrascriverlo?",
+                "Conferma esportazione",
+                JOptionPane.YES_NO_OPTION);
 
-            FileManager.salvaPersone(persone);
+            if (response != JOptionPane.YES_OPTION) {
+                return;
+            }
+        }
+
+        try {
+            FileManager.esportaPersone(personeSelezionate(indici), file);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Impossibile esportare i contatti: " + e.getMessage(),
+                "Errore",
+                JOptionPane.ERROR_MESSAGE);
         }
     }
 
     private void eliminaPersona() {
-        int selectedRow = tabella.getSelectedRow();
+        int[] indici = indiciSelezionati();
 
-        if (selectedRow == -1) {
+        if (indici.length == 0) {
             JOptionPane.showMessageDialog(this,
                 "Per eliminare è necessario prima selezionare una persona",
                 "Attenzione",
@@ -249,10 +602,13 @@ public class RubricaMain extends JFrame {
             return;
         }
 
-        int modelRow = tabella.convertRowIndexToModel(selectedRow);
-        Persona personaSelezionata = filteredPersone.get(modelRow);
-        String messaggio = "Eliminare la persona " + personaSelezionata.getNome() + " " +
-                           personaSelezionata.getCognome() + "?";
+        String messaggio;
+        if (indici.length == 1) {
+            messaggio = "Eliminare la persona " + persone.getNome(indici[0]) + " " +
+                        persone.getCognome(indici[0]) + "?";
+        } else {
+            messaggio = "Eliminare le " + indici.length + " persone selezionate?";
+        }
 
         int response = JOptionPane.showConfirmDialog(this,
             messaggio,
@@ -260,17 +616,48 @@ public class RubricaMain extends JFrame {
             JOptionPane.YES_NO_OPTION);
 
         if (response == JOptionPane.YES_OPTION) {
-            FileManager.deletePersona(personaSelezionata);
-
-            persone.remove(personaSelezionata);
+            int[] ordinati = indici.clone();
+            Arrays.sort(ordinati);
+
+            List<String> fileRimossi = new ArrayList<>();
+            List<Persona> rimosse = new ArrayList<>();
+            for (int indice : ordinati) {
+                fileRimossi.add(persone.getFile(indice));
+                rimosse.add(persone.get(indice));
+            }
+            persone.rimuovi(ordinati);
 
+            if (!salvaPersone(new int[0], fileRimossi)) {
+                for (int k = 0; k < ordinati.length; k++) {
+                    persone.add(ordinati[k], rimosse.get(k));
+                }
+            }
             filterContacts(searchField.getText());
-
-            FileManager.salvaPersone(persone);
         }
     }
 
     public static void main(String[] args) {
+        for (String arg : args) {
+            if ("--benchmark-avvio".equals(arg)) {
+                benchmarkAvvio = true;
+            } else if ("--memoria-limitata".equals(arg)) {
+                limiteCache = 10000;
+            } else if (arg.startsWith("--memoria-limitata=")) {
+                String valore = arg.substring("--memoria-limitata=".length());
+                try {
+                    limiteCache = Integer.parseInt(valore);
+                } catch (NumberFormatException e) {
+                    limiteCache = 0;
+                }
+
+                if (limiteCache <= 0) {
+                    System.err.println("Valore non valido per --memoria-limitata: " + valore +
+                                       " (serve il numero massimo di contatti in cache, maggiore di 0)");
+                    System.exit(1);
+                }
+            }
+        }
+
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {